@@ -0,0 +1,292 @@
+/**
+ * @file BatteryHistory.java
+ * @brief Fixed-memory battery time series for a single Pod.
+ * @version 1.0
+ * @author Thomas Reidemeister <treideme@gmail.com>
+ * @copyright 2023 Thomas Reidemeister
+ * @license Apache-2.0
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.reidemeister.reactiontrainer;
+
+/**
+ * Fixed-memory battery time series for a single Pod.
+ *
+ * Samples are kept at three resolutions (raw, 1-minute and 1-hour averages) in primitive
+ * ring buffers, so the memory used per Pod is constant regardless of how long the app runs.
+ */
+public class BatteryHistory {
+    // Resolution levels.
+    public static final int RAW = 0;
+    public static final int MINUTE = 1;
+    public static final int HOUR = 2;
+
+    public static final long MINUTE_MS = 60L * 1000L;
+    public static final long HOUR_MS = 60L * MINUTE_MS;
+
+    // Ring sizes: 1 min of status polls at 10 Hz, 2 h of minutes, 2 days of hours.
+    public static final int RAW_CAPACITY = 600;
+    public static final int MINUTE_CAPACITY = 120;
+    public static final int HOUR_CAPACITY = 48;
+
+    // Default voltage at which the Pod is considered empty.
+    public static final int DEFAULT_EMPTY_MV = 3300;
+
+    // Window of recent history used for the depletion forecast.
+    public static final long FORECAST_WINDOW_MS = 10L * MINUTE_MS;
+
+    // Completed minute averages required within the window before forecasting.
+    public static final int MIN_FORECAST_MINUTES = 3;
+
+    private final Series[] levels;
+    private final int emptyMv;
+
+    // Running sums for the minute and hour buckets currently being filled.
+    // Buckets are timestamped with the mean time of their samples.
+    private long minuteBucket = -1;
+    private long minuteTimeSum;
+    private long minuteSum;
+    private int minuteCount;
+    private long hourBucket = -1;
+    private long hourTimeSum;
+    private long hourSum;
+    private int hourCount;
+
+    // Primitive ring buffer of (timestamp, millivolt) pairs.
+    private static final class Series {
+        final long[] time;
+        final int[] mv;
+        int head; // Next write position
+        int size;
+
+        Series(int capacity) {
+            time = new long[capacity];
+            mv = new int[capacity];
+        }
+
+        void add(long t, int v) {
+            time[head] = t;
+            mv[head] = v;
+            head = (head + 1) % time.length;
+            if (size < time.length) {
+                size++;
+            }
+        }
+
+        // Physical index of the i-th oldest sample.
+        int index(int i) {
+            return (head - size + i + time.length) % time.length;
+        }
+    }
+
+    public BatteryHistory() {
+        this(DEFAULT_EMPTY_MV);
+    }
+
+    public BatteryHistory(int emptyMv) {
+        this.emptyMv = emptyMv;
+        this.levels = new Series[] {
+                new Series(RAW_CAPACITY),
+                new Series(MINUTE_CAPACITY),
+                new Series(HOUR_CAPACITY),
+        };
+    }
+
+    /**
+     * Record a battery reading.
+     * @param timeMs monotonic timestamp of the reading in milliseconds
+     * @param mv battery voltage in millivolts
+     */
+    public synchronized void add(long timeMs, int mv) {
+        levels[RAW].add(timeMs, mv);
+
+        long minute = timeMs / MINUTE_MS;
+        if (minute != minuteBucket) {
+            if (minuteCount > 0) {
+                levels[MINUTE].add(minuteTimeSum / minuteCount, (int) (minuteSum / minuteCount));
+            }
+            minuteBucket = minute;
+            minuteTimeSum = 0;
+            minuteSum = 0;
+            minuteCount = 0;
+        }
+        minuteTimeSum += timeMs;
+        minuteSum += mv;
+        minuteCount++;
+
+        long hour = timeMs / HOUR_MS;
+        if (hour != hourBucket) {
+            if (hourCount > 0) {
+                levels[HOUR].add(hourTimeSum / hourCount, (int) (hourSum / hourCount));
+            }
+            hourBucket = hour;
+            hourTimeSum = 0;
+            hourSum = 0;
+            hourCount = 0;
+        }
+        hourTimeSum += timeMs;
+        hourSum += mv;
+        hourCount++;
+    }
+
+    // Number of completed samples held at the given resolution.
+    public synchronized int size(int level) {
+        return levels[level].size;
+    }
+
+    // Most recent raw reading in millivolts, or -1 if nothing was recorded yet.
+    public synchronized int latest() {
+        Series raw = levels[RAW];
+        if (raw.size == 0) {
+            return -1;
+        }
+        return raw.mv[raw.index(raw.size - 1)];
+    }
+
+    /**
+     * Reduce a resolution level to at most threshold points for display using
+     * Largest-Triangle-Three-Buckets, preserving the visual shape of the curve.
+     * @param level RAW, MINUTE or HOUR
+     * @param threshold maximum number of points to return (at least 3)
+     * @param outTime receives timestamps, oldest first, must hold threshold points
+     * @param outMv receives millivolt values, oldest first, must hold threshold points
+     * @return number of points written
+     * @throws IllegalArgumentException if threshold is below 3 or the output arrays are too short
+     */
+    public synchronized int downsample(int level, int threshold, long[] outTime, int[] outMv) {
+        if (threshold < 3) {
+            throw new IllegalArgumentException("threshold must be at least 3");
+        }
+        if (outTime.length < threshold || outMv.length < threshold) {
+            throw new IllegalArgumentException("output arrays shorter than threshold");
+        }
+        Series s = levels[level];
+        int n = s.size;
+        if (threshold >= n) {
+            for (int i = 0; i < n; i++) {
+                int idx = s.index(i);
+                outTime[i] = s.time[idx];
+                outMv[i] = s.mv[idx];
+            }
+            return n;
+        }
+
+        // Always keep the first and last point.
+        int out = 0;
+        int a = s.index(0);
+        outTime[out] = s.time[a];
+        outMv[out] = s.mv[a];
+        out++;
+
+        double every = (double) (n - 2) / (threshold - 2);
+        for (int b = 0; b < threshold - 2; b++) {
+            // Average of the next bucket is the third triangle vertex.
+            int nextStart = (int) Math.floor((b + 1) * every) + 1;
+            int nextEnd = Math.min((int) Math.floor((b + 2) * every) + 1, n);
+            double avgT = 0;
+            double avgV = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                int idx = s.index(i);
+                avgT += s.time[idx];
+                avgV += s.mv[idx];
+            }
+            int nextLen = nextEnd - nextStart;
+            avgT /= nextLen;
+            avgV /= nextLen;
+
+            // Pick the point of the current bucket spanning the largest triangle.
+            int start = (int) Math.floor(b * every) + 1;
+            int end = (int) Math.floor((b + 1) * every) + 1;
+            double aT = s.time[a];
+            double aV = s.mv[a];
+            double maxArea = -1;
+            int chosen = s.index(start);
+            for (int i = start; i < end; i++) {
+                int idx = s.index(i);
+                double area = Math.abs((aT - avgT) * (s.mv[idx] - aV)
+                        - (aT - s.time[idx]) * (avgV - aV));
+                if (area > maxArea) {
+                    maxArea = area;
+                    chosen = idx;
+                }
+            }
+            outTime[out] = s.time[chosen];
+            outMv[out] = s.mv[chosen];
+            out++;
+            a = chosen;
+        }
+
+        int last = s.index(n - 1);
+        outTime[out] = s.time[last];
+        outMv[out] = s.mv[last];
+        out++;
+        return out;
+    }
+
+    /**
+     * Forecast the time until the battery reaches the empty voltage, using a least squares
+     * fit over the minute averages of the most recent FORECAST_WINDOW_MS. Only minute averages
+     * are used since raw readings include load dips from the LED, so no forecast is made until
+     * MIN_FORECAST_MINUTES have been completed.
+     * @return milliseconds until empty, 0 if the fitted voltage is already at or below empty,
+     *         or -1 if there is not enough history or no discharge trend is visible
+     */
+    public synchronized long timeToEmptyMs() {
+        Series raw = levels[RAW];
+        if (raw.size == 0) {
+            return -1;
+        }
+        long now = raw.time[raw.index(raw.size - 1)];
+        long since = now - FORECAST_WINDOW_MS;
+        Series s = levels[MINUTE];
+        if (countSince(s, since) < MIN_FORECAST_MINUTES) {
+            return -1;
+        }
+
+        // Sums relative to now to keep the doubles well conditioned.
+        double n = 0;
+        double sumT = 0;
+        double sumV = 0;
+        double sumTT = 0;
+        double sumTV = 0;
+        for (int i = 0; i < s.size; i++) {
+            int idx = s.index(i);
+            if (s.time[idx] < since) {
+                continue;
+            }
+            double t = s.time[idx] - now;
+            double v = s.mv[idx];
+            n++;
+            sumT += t;
+            sumV += v;
+            sumTT += t * t;
+            sumTV += t * v;
+        }
+
+        double denom = n * sumTT - sumT * sumT;
+        if (denom <= 0) {
+            return -1;
+        }
+        double slope = (n * sumTV - sumT * sumV) / denom; // mV per ms
+        if (slope >= 0) {
+            return -1;
+        }
+        double intercept = (sumV - slope * sumT) / n; // Fitted voltage at now
+        if (intercept <= emptyMv) {
+            return 0;
+        }
+        return (long) ((emptyMv - intercept) / slope);
+    }
+
+    private static int countSince(Series s, long since) {
+        int count = 0;
+        for (int i = s.size - 1; i >= 0; i--) {
+            if (s.time[s.index(i)] < since) {
+                break;
+            }
+            count++;
+        }
+        return count;
+    }
+}
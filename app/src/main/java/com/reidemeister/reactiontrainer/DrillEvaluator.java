@@ -0,0 +1,382 @@
+/**
+ * @file DrillEvaluator.java
+ * @brief Go/no-go drill evaluation on top of Pod events.
+ * @version 1.0
+ * @author Thomas Reidemeister <treideme@gmail.com>
+ * @copyright 2023 Thomas Reidemeister
+ * @license Apache-2.0
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.reidemeister.reactiontrainer;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Go/no-go drill evaluation on top of Pod events.
+ *
+ * Every Pod owns one active stimulus slot, so a tap is matched to its stimulus in constant
+ * time. Taps are classified as soon as they arrive and expired stimuli are resolved on each
+ * tick, and every verdict is published to the listener as it is made. The outcome of each
+ * event is looked up in a Rules table, so drills can score events differently.
+ *
+ * The evaluator is not registered with the Pods itself; the owner forwards Pod callbacks to it,
+ * since registering a callback from within a Pod callback would modify the callback map while
+ * it is being iterated.
+ */
+public class DrillEvaluator implements Pod.Callback {
+    public static final int DEFAULT_MAX_PODS = 64;
+
+    // Taps faster than this after illumination are anticipations, not reactions.
+    public static final long MIN_REACTION_MS = 100;
+
+    // Stimulus kinds.
+    public enum Kind {
+        GO,     // Pod must be tapped before the timeout
+        NO_GO,  // Pod must not be tapped
+    }
+
+    public enum Outcome {
+        HIT,                // GO stimulus tapped in time
+        MISS,               // GO stimulus expired without a tap
+        FALSE_START,        // Tap before a stimulus could have been seen
+        WRONG_TARGET,       // Tap on a NO_GO stimulus or on a Pod without a stimulus
+        CORRECT_REJECTION,  // NO_GO stimulus expired without a tap
+    }
+
+    // Events classified by the rules.
+    public enum Event {
+        TAP,        // Tap on a stimulus within its window
+        EARLY_TAP,  // Tap on a stimulus less than MIN_REACTION_MS after illumination
+        TIMEOUT,    // Stimulus expired without a tap
+        STRAY_TAP,  // Tap on a Pod without a stimulus while a GO stimulus is active elsewhere
+        IDLE_TAP,   // Tap on a Pod without a stimulus while no GO stimulus is active
+    }
+
+    /**
+     * Table mapping events to outcomes. TAP, EARLY_TAP and TIMEOUT are looked up by the kind
+     * of the stimulus, STRAY_TAP and IDLE_TAP apply to Pods without a stimulus. A null
+     * outcome ignores the event.
+     */
+    public static final class Rules {
+        private final Outcome[][] armed = new Outcome[Kind.values().length][Event.values().length];
+        private final Outcome[] unarmed = new Outcome[Event.values().length];
+
+        // Standard go/no-go scoring.
+        public static Rules defaults() {
+            return new Rules()
+                    .set(Kind.GO, Event.TAP, Outcome.HIT)
+                    .set(Kind.GO, Event.EARLY_TAP, Outcome.FALSE_START)
+                    .set(Kind.GO, Event.TIMEOUT, Outcome.MISS)
+                    .set(Kind.NO_GO, Event.TAP, Outcome.WRONG_TARGET)
+                    .set(Kind.NO_GO, Event.EARLY_TAP, Outcome.FALSE_START)
+                    .set(Kind.NO_GO, Event.TIMEOUT, Outcome.CORRECT_REJECTION)
+                    .setUnarmed(Event.STRAY_TAP, Outcome.WRONG_TARGET)
+                    .setUnarmed(Event.IDLE_TAP, Outcome.FALSE_START);
+        }
+
+        public Rules set(Kind kind, Event event, Outcome outcome) {
+            armed[kind.ordinal()][event.ordinal()] = outcome;
+            return this;
+        }
+
+        public Rules setUnarmed(Event event, Outcome outcome) {
+            unarmed[event.ordinal()] = outcome;
+            return this;
+        }
+
+        Outcome outcome(Kind kind, Event event) {
+            return kind == null ? unarmed[event.ordinal()] : armed[kind.ordinal()][event.ordinal()];
+        }
+
+        Rules copy() {
+            Rules copy = new Rules();
+            for (int i = 0; i < armed.length; i++) {
+                System.arraycopy(armed[i], 0, copy.armed[i], 0, armed[i].length);
+            }
+            System.arraycopy(unarmed, 0, copy.unarmed, 0, unarmed.length);
+            return copy;
+        }
+    }
+
+    public static final class Verdict {
+        public final int podSlot;
+        public final long stimulusId; // -1 if the tap did not belong to a stimulus
+        public final Outcome outcome;
+        public final long reactionMs; // Latency corrected, -1 if there was no tap
+
+        Verdict(int podSlot, long stimulusId, Outcome outcome, long reactionMs) {
+            this.podSlot = podSlot;
+            this.stimulusId = stimulusId;
+            this.outcome = outcome;
+            this.reactionMs = reactionMs;
+        }
+
+        @Override
+        public String toString() {
+            return "Pod " + podSlot + " " + outcome + (reactionMs >= 0 ? " " + reactionMs + " ms" : "");
+        }
+    }
+
+    // Interface for clients to be notified of drill verdicts.
+    public interface Listener {
+        void onVerdict(Verdict verdict);
+    }
+
+    private final Listener listener;
+    private final Rules rules;
+    private final Map<Pod, Integer> podSlots;
+
+    // Active stimulus per Pod slot, stimulusId == -1 marks a free slot.
+    private final long[] stimulusId;
+    private final Kind[] kind;
+    private final long[] illuminatedAt;
+    private final long[] deadline;
+    private int podCount;
+    private int activeGo;
+    private boolean paused;
+    private long nextDeadline = Long.MAX_VALUE;
+    private long nextStimulusId;
+
+    private final int[] counts = new int[Outcome.values().length];
+
+    public DrillEvaluator(Listener listener) {
+        this(listener, DEFAULT_MAX_PODS, Rules.defaults());
+    }
+
+    public DrillEvaluator(Listener listener, int maxPods, Rules rules) {
+        this.listener = listener;
+        this.rules = rules.copy();
+        this.podSlots = new HashMap<>();
+        this.stimulusId = new long[maxPods];
+        this.kind = new Kind[maxPods];
+        this.illuminatedAt = new long[maxPods];
+        this.deadline = new long[maxPods];
+        for (int i = 0; i < maxPods; i++) {
+            stimulusId[i] = -1;
+        }
+    }
+
+    /**
+     * Assign a stimulus slot to a Pod. Pod callbacks must be forwarded to the evaluator.
+     * @return slot assigned to the Pod, or -1 if all slots are taken
+     */
+    public synchronized int addPod(Pod pod) {
+        Integer slot = podSlots.get(pod);
+        if (slot != null) {
+            return slot;
+        }
+        if (podCount == stimulusId.length) {
+            Log.w("ReactionTrainerLog", "DrillEvaluator out of Pod slots");
+            return -1;
+        }
+        podSlots.put(pod, podCount);
+        return podCount++;
+    }
+
+    /**
+     * Arm a stimulus on a Pod whose light command was just sent.
+     * @param pod Pod that was lit
+     * @param kind GO or NO_GO
+     * @param timeout stimulus duration in ms, 0 for no timeout
+     * @return stimulus id, or -1 if the Pod is unknown
+     */
+    public long arm(Pod pod, Kind kind, int timeout) {
+        Integer slot;
+        synchronized (this) {
+            slot = podSlots.get(pod);
+        }
+        if (slot == null) {
+            return -1;
+        }
+        long now = SystemClock.elapsedRealtime();
+        return arm(slot, kind, now + pod.getLatencyProfile().median(), timeout);
+    }
+
+    /**
+     * Arm a stimulus on a Pod slot. A stimulus still active on the slot is resolved first.
+     * @param slot Pod slot in [0, maxPods)
+     * @param kind GO or NO_GO
+     * @param illuminatedAtMs expected time the LED turns on
+     * @param timeout stimulus duration in ms, 0 for no timeout
+     * @return stimulus id, or -1 if the slot is invalid or the evaluator is paused
+     */
+    public long arm(int slot, Kind kind, long illuminatedAtMs, int timeout) {
+        Verdict expired;
+        long id;
+        synchronized (this) {
+            if (paused || slot < 0 || slot >= stimulusId.length) {
+                return -1;
+            }
+            expired = resolve(slot, -1);
+            id = nextStimulusId++;
+            stimulusId[slot] = id;
+            this.kind[slot] = kind;
+            illuminatedAt[slot] = illuminatedAtMs;
+            deadline[slot] = timeout > 0 ? illuminatedAtMs + timeout : Long.MAX_VALUE;
+            nextDeadline = Math.min(nextDeadline, deadline[slot]);
+            if (kind == Kind.GO) {
+                activeGo++;
+            }
+        }
+        publish(expired);
+        return id;
+    }
+
+    /**
+     * Classify a tap on a Pod slot.
+     * @param slot Pod slot that was tapped
+     * @param timeMs time of the tap at the Pod
+     */
+    public void onTap(int slot, long timeMs) {
+        Verdict verdict;
+        synchronized (this) {
+            if (paused || slot < 0 || slot >= stimulusId.length) {
+                return;
+            }
+            if (stimulusId[slot] < 0) {
+                verdict = classify(slot, -1, null, activeGo > 0 ? Event.STRAY_TAP : Event.IDLE_TAP, -1);
+            } else if (timeMs > deadline[slot]) {
+                // Tick has not caught up with the timeout yet.
+                verdict = resolve(slot, -1);
+            } else {
+                verdict = resolve(slot, timeMs);
+            }
+        }
+        publish(verdict);
+    }
+
+    /**
+     * Resolve all stimuli whose timeout has passed. Call this periodically; the tick
+     * interval bounds the delay until a miss is reported.
+     * @param nowMs current time
+     */
+    public void expire(long nowMs) {
+        Verdict[] expired = null;
+        int count = 0;
+        synchronized (this) {
+            if (paused || nowMs < nextDeadline) {
+                return;
+            }
+            long next = Long.MAX_VALUE;
+            for (int slot = 0; slot < stimulusId.length; slot++) {
+                if (stimulusId[slot] < 0) {
+                    continue;
+                }
+                if (deadline[slot] <= nowMs) {
+                    if (expired == null) {
+                        expired = new Verdict[stimulusId.length];
+                    }
+                    expired[count++] = resolve(slot, -1);
+                } else {
+                    next = Math.min(next, deadline[slot]);
+                }
+            }
+            nextDeadline = next;
+        }
+        for (int i = 0; i < count; i++) {
+            publish(expired[i]);
+        }
+    }
+
+    // Number of verdicts with the given outcome since the last reset.
+    public synchronized int getCount(Outcome outcome) {
+        return counts[outcome.ordinal()];
+    }
+
+    // Ignore all stimuli, taps and timeouts while paused, e.g. during latency calibration.
+    public synchronized void setPaused(boolean paused) {
+        this.paused = paused;
+    }
+
+    // Drop all active stimuli and tallies.
+    public synchronized void reset() {
+        for (int slot = 0; slot < stimulusId.length; slot++) {
+            stimulusId[slot] = -1;
+        }
+        activeGo = 0;
+        nextDeadline = Long.MAX_VALUE;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = 0;
+        }
+    }
+
+    // Close the active stimulus of a slot, tapAt < 0 if it was not tapped. Caller holds the lock.
+    private Verdict resolve(int slot, long tapAt) {
+        long id = stimulusId[slot];
+        if (id < 0) {
+            return null;
+        }
+        stimulusId[slot] = -1;
+        if (kind[slot] == Kind.GO) {
+            activeGo--;
+        }
+        if (tapAt < 0) {
+            return classify(slot, id, kind[slot], Event.TIMEOUT, -1);
+        }
+        long reaction = tapAt - illuminatedAt[slot];
+        if (reaction < MIN_REACTION_MS) {
+            return classify(slot, id, kind[slot], Event.EARLY_TAP, Math.max(0, reaction));
+        }
+        return classify(slot, id, kind[slot], Event.TAP, reaction);
+    }
+
+    // Look up the outcome of an event and count it. Caller holds the lock.
+    private Verdict classify(int slot, long id, Kind kind, Event event, long reactionMs) {
+        Outcome outcome = rules.outcome(kind, event);
+        if (outcome == null) {
+            return null;
+        }
+        counts[outcome.ordinal()]++;
+        return new Verdict(slot, id, outcome, reactionMs);
+    }
+
+    private void publish(Verdict verdict) {
+        if (verdict != null && listener != null) {
+            listener.onVerdict(verdict);
+        }
+    }
+
+    // Pod callback handlers
+    @Override
+    public void onConnected(Pod pod) {
+        // pass
+    }
+
+    @Override
+    public void onConnectFailed(Pod pod) {
+        // pass
+    }
+
+    @Override
+    public void onDisconnected(Pod pod) {
+        // pass
+    }
+
+    @Override
+    public void onReceive(Pod pod, BluetoothGattCharacteristic rx) {
+        long now = SystemClock.elapsedRealtime();
+        String result = rx.getStringValue(0);
+        if (result == null || !result.startsWith("T")) {
+            return;
+        }
+        Integer slot;
+        synchronized (this) {
+            slot = podSlots.get(pod);
+        }
+        if (slot != null) {
+            // Move the tap back by the notification delay, as the start is moved by the downlink.
+            onTap(slot, now - pod.getLatencyProfile().uplinkMedian());
+        }
+    }
+
+    @Override
+    public void onDeviceInfoAvailable(Pod pod) {
+        // pass
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * @file LatencyProfile.java
+ * @brief Command-to-illumination latency profile for a single Pod.
+ * @version 1.0
+ * @author Thomas Reidemeister <treideme@gmail.com>
+ * @copyright 2023 Thomas Reidemeister
+ * @license Apache-2.0
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.reidemeister.reactiontrainer;
+
+import java.util.Arrays;
+
+/**
+ * Command-to-illumination latency profile for a single Pod.
+ *
+ * Each sample is the delay between queueing a light command on the phone and the LED
+ * turning on at the Pod, together with the delay of a notification from the Pod back to the
+ * phone. Round trips are measured from the time the command is written to the Pod, so the
+ * wait in the phone's send queue is not attributed to the uplink. Samples are kept in a fixed-size ring so the profile follows changing link
+ * conditions without growing.
+ */
+public class LatencyProfile {
+    public static final int CAPACITY = 64;
+
+    // Samples required before the profile is used for corrections.
+    public static final int MIN_SAMPLES = 5;
+
+    private final long[] samples = new long[CAPACITY];
+    private final long[] uplinkSamples = new long[CAPACITY];
+    private int head; // Next write position
+    private int size;
+
+    /**
+     * Estimate the latency from writing a light command to illumination from its round trip.
+     *
+     * The Pod acknowledges the light command once the LED is on and reports how long it took
+     * from receiving the command to switching the LED. The remaining round trip time is split
+     * evenly between the downlink and the uplink, so the one-way latency to illumination is
+     * (rtt + firmwareDelay) / 2.
+     * @param rttMs time from writing the command to receiving the acknowledgement
+     * @param firmwareDelayMs time the firmware reports between command receipt and LED on
+     * @return estimated write-to-illumination latency in milliseconds
+     */
+    public static long estimate(long rttMs, long firmwareDelayMs) {
+        return (rttMs + plausibleFirmwareDelay(rttMs, firmwareDelayMs)) / 2;
+    }
+
+    /**
+     * Estimate the uplink delay of a notification from the Pod from a light command round trip,
+     * i.e. the half of the round trip not spent in the firmware: (rtt - firmwareDelay) / 2.
+     * @param rttMs time from writing the command to receiving the acknowledgement
+     * @param firmwareDelayMs time the firmware reports between command receipt and LED on
+     * @return estimated Pod-to-phone delay in milliseconds
+     */
+    public static long uplink(long rttMs, long firmwareDelayMs) {
+        return (rttMs - plausibleFirmwareDelay(rttMs, firmwareDelayMs)) / 2;
+    }
+
+    private static long plausibleFirmwareDelay(long rttMs, long firmwareDelayMs) {
+        if (firmwareDelayMs < 0 || firmwareDelayMs > rttMs) {
+            // Implausible firmware timestamp, fall back to half the round trip.
+            return 0;
+        }
+        return firmwareDelayMs;
+    }
+
+    /**
+     * Record a sample.
+     * @param latencyMs command-to-illumination latency
+     * @param uplinkMs Pod-to-phone notification delay
+     */
+    public synchronized void add(long latencyMs, long uplinkMs) {
+        samples[head] = latencyMs;
+        uplinkSamples[head] = uplinkMs;
+        head = (head + 1) % CAPACITY;
+        if (size < CAPACITY) {
+            size++;
+        }
+    }
+
+    public synchronized void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized boolean isCalibrated() {
+        return size >= MIN_SAMPLES;
+    }
+
+    /**
+     * Latency percentile of the recorded samples.
+     * @param p percentile in the range [0, 100]
+     * @return latency in milliseconds, or 0 if no samples were recorded
+     */
+    public synchronized long percentile(int p) {
+        return percentile(samples, p);
+    }
+
+    // Typical latency used for corrections, 0 until the Pod is calibrated.
+    public synchronized long median() {
+        return isCalibrated() ? percentile(samples, 50) : 0;
+    }
+
+    // Typical notification delay from the Pod, 0 until the Pod is calibrated.
+    public synchronized long uplinkMedian() {
+        return isCalibrated() ? percentile(uplinkSamples, 50) : 0;
+    }
+
+    private long percentile(long[] ring, int p) {
+        if (size == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(ring, size);
+        Arrays.sort(sorted);
+        int idx = (int) Math.round((size - 1) * Math.max(0, Math.min(100, p)) / 100.0);
+        return sorted[idx];
+    }
+
+    @Override
+    public String toString() {
+        return String.format("p50 %d ms, p90 %d ms (n=%d)", percentile(50), percentile(90), size());
+    }
+}
@@ -15,6 +15,7 @@ import android.bluetooth.BluetoothGattCharacteristic;
 import android.content.pm.PackageManager;
 import android.graphics.Color;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.text.Editable;
 import android.text.InputFilter;
 import android.text.Spanned;
@@ -32,23 +33,38 @@ import java.util.LinkedList;
 import java.util.List;
 
 
-public class MainActivity extends AppCompatActivity implements Pod.Callback, TextWatcher {
+public class MainActivity extends AppCompatActivity implements Pod.Callback, DrillEvaluator.Listener, TextWatcher {
+    // Latency calibration settings.
+    private static final int CALIBRATION_ROUNDS = 20;
+    private static final int CALIBRATION_INTERVAL_MS = 500; // Must exceed PendingLights.ACK_TIMEOUT_MS
+    private static final int CALIBRATION_TIMEOUT_MS = 100;
+
+    // Points shown for the battery history of a Pod.
+    private static final int BATTERY_HISTORY_POINTS = 12;
+
     private PodsManager podsManager;
+    private DrillEvaluator drillEvaluator;
     private List<Pod> knownPods;
     private List<Button> knownPodsBtns;
+    private List<BatteryHistory> knownPodsBattery;
     private Handler statusHandler;
+    private boolean calibrating;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         Log.d("ReactionTrainerLog", "onCreate");
         podsManager = new PodsManager(getApplicationContext(), this);
+        drillEvaluator = new DrillEvaluator(this);
         knownPods = new LinkedList<>();
         knownPodsBtns = new LinkedList<>();
+        knownPodsBattery = new LinkedList<>();
         setContentView(R.layout.activity_main);
         EditText txt = findViewById(R.id.editTimeout);
         txt.setText("0");
         txt.addTextChangedListener(this);
+        Button calibrate = findViewById(R.id.buttonCalibrate);
+        calibrate.setOnClickListener(v -> calibrateLatency());
         requestPermissions();
         statusHandler=new Handler();
         statusHandler.postDelayed(new Runnable() {
@@ -65,6 +81,7 @@ public class MainActivity extends AppCompatActivity implements Pod.Callback, Tex
         for(Pod pod : knownPods) {
             pod.send("status");
         }
+        drillEvaluator.expire(SystemClock.elapsedRealtime());
         Log.d("ReactionTrainerLog", "handleUpdate");
     }
 
@@ -83,6 +100,58 @@ public class MainActivity extends AppCompatActivity implements Pod.Callback, Tex
         view.setText(status);
     }
 
+    /**
+     * Measure the command-to-illumination latency of every known Pod by repeatedly
+     * lighting them and collecting the LED-on acknowledgements.
+     */
+    protected void calibrateLatency() {
+        if(calibrating) {
+            return;
+        }
+        calibrating = true;
+        drillEvaluator.setPaused(true);
+        changeStatus("Calibrating latency...");
+        for(Pod pod : knownPods) {
+            pod.getLatencyProfile().clear();
+        }
+        for(int round = 0; round < CALIBRATION_ROUNDS; round++) {
+            statusHandler.postDelayed(() -> {
+                for(Pod pod : knownPods) {
+                    pod.light(CALIBRATION_TIMEOUT_MS);
+                }
+            }, (long) round * CALIBRATION_INTERVAL_MS);
+        }
+        statusHandler.postDelayed(() -> {
+            StringBuilder status = new StringBuilder();
+            for(int i = 0; i < knownPods.size(); i++) {
+                status.append("Pod ").append(i).append(": ")
+                        .append(knownPods.get(i).getLatencyProfile()).append("\n");
+            }
+            changeStatus(status.toString());
+            drillEvaluator.setPaused(false);
+            calibrating = false;
+        }, (long) CALIBRATION_ROUNDS * CALIBRATION_INTERVAL_MS);
+    }
+
+    /**
+     * Show the battery history of a Pod in the status line, reduced to a few points.
+     * Minute averages are shown once available, raw readings before that.
+     * @param podIndex index of the Pod
+     * @param history battery history of the Pod
+     */
+    protected void showBatteryHistory(int podIndex, BatteryHistory history) {
+        int level = history.size(BatteryHistory.MINUTE) >= 3 ? BatteryHistory.MINUTE : BatteryHistory.RAW;
+        long[] time = new long[BATTERY_HISTORY_POINTS];
+        int[] mv = new int[BATTERY_HISTORY_POINTS];
+        int count = history.downsample(level, BATTERY_HISTORY_POINTS, time, mv);
+        long now = SystemClock.elapsedRealtime();
+        StringBuilder status = new StringBuilder("Pod " + podIndex + " battery:\n");
+        for (int i = 0; i < count; i++) {
+            status.append(String.format("%4d s ago: %4d mV\n", (now - time[i]) / 1000, mv[i]));
+        }
+        changeStatus(status.toString());
+    }
+
     /**
      * Request the required permissions to use this app.
      */
@@ -133,20 +202,30 @@ public class MainActivity extends AppCompatActivity implements Pod.Callback, Tex
         }
         LinearLayout buttonContainer = findViewById(R.id.buttonContainer);
         Button newButton = new Button(this);
-        newButton.setText("Pod "+knownPods.size());
+        BatteryHistory history = new BatteryHistory();
+        int podIndex = knownPods.size();
+        newButton.setText("Pod "+podIndex);
         newButton.setOnClickListener(v -> {
             EditText txt = findViewById(R.id.editTimeout);
             try {
                 int timeout = Integer.parseInt(String.valueOf(txt.getText()));
-                pod.send("L 1 "+timeout);
+                if(pod.light(timeout)) {
+                    drillEvaluator.arm(pod, DrillEvaluator.Kind.GO, timeout);
+                }
             } catch (Exception e) {
                 Log.d("ReactionTrainerLog", "Invalid timeout");
                 return;
             }
         });
+        newButton.setOnLongClickListener(v -> {
+            showBatteryHistory(podIndex, history);
+            return true;
+        });
 
         knownPodsBtns.add(newButton);
+        knownPodsBattery.add(history);
         knownPods.add(pod);
+        drillEvaluator.addPod(pod);
 
         // Force GUI update
         runOnUiThread(() -> buttonContainer.addView(newButton));
@@ -180,6 +259,7 @@ public class MainActivity extends AppCompatActivity implements Pod.Callback, Tex
     public void onReceive(Pod pod, BluetoothGattCharacteristic rx) {
         String result = rx.getStringValue(0);
         Log.d("ReactionTrainerLog", "Received data from Pod: "+result);
+        drillEvaluator.onReceive(pod, rx);
         if(result.startsWith("V")) {
             String[] parts = result.split(" ");
 
@@ -191,8 +271,15 @@ public class MainActivity extends AppCompatActivity implements Pod.Callback, Tex
                     for(int i = 0; i < knownPods.size(); i++) {
                         if(knownPods.get(i) == pod) {
                             Button btn = knownPodsBtns.get(i);
+                            BatteryHistory history = knownPodsBattery.get(i);
+                            history.add(SystemClock.elapsedRealtime(), vbat);
+                            long remaining = history.timeToEmptyMs();
                             runOnUiThread(() -> {
-                                btn.setText(String.format("Battery %4d mV", vbat));
+                                if (remaining >= 0) {
+                                    btn.setText(String.format("Battery %4d mV (%d min)", vbat, remaining / BatteryHistory.MINUTE_MS));
+                                } else {
+                                    btn.setText(String.format("Battery %4d mV", vbat));
+                                }
                                 if(led == 1) {
                                     btn.setBackgroundColor(Color.GREEN);
                                 } else {
@@ -207,6 +294,16 @@ public class MainActivity extends AppCompatActivity implements Pod.Callback, Tex
             } else {
                 Log.e("ReactionTrainerLog", "Invalid number format");
             }
+        } else if(result.startsWith("A")) {
+            // LED-on acknowledgement with the firmware delay from command receipt in ms.
+            String[] parts = result.trim().split(" ");
+            try {
+                long firmwareDelay = parts.length > 1 ? Long.parseLong(parts[1]) : 0;
+                long latency = pod.onLightAck(firmwareDelay);
+                Log.d("ReactionTrainerLog", "Light latency: "+latency+" ms");
+            } catch (NumberFormatException e) {
+                Log.e("ReactionTrainerLog", "Invalid number format");
+            }
         }
     }
 
@@ -215,6 +312,18 @@ public class MainActivity extends AppCompatActivity implements Pod.Callback, Tex
         Log.d("ReactionTrainerLog", "Pod info available");
     }
 
+    // Drill evaluation handlers
+    @Override
+    public void onVerdict(DrillEvaluator.Verdict verdict) {
+        Log.d("ReactionTrainerLog", "Verdict: "+verdict);
+        String status = verdict + "\n" +
+                "Hits " + drillEvaluator.getCount(DrillEvaluator.Outcome.HIT) +
+                ", Misses " + drillEvaluator.getCount(DrillEvaluator.Outcome.MISS) +
+                ", False starts " + drillEvaluator.getCount(DrillEvaluator.Outcome.FALSE_START) +
+                ", Wrong targets " + drillEvaluator.getCount(DrillEvaluator.Outcome.WRONG_TARGET);
+        runOnUiThread(() -> changeStatus(status));
+    }
+
     @Override
     public void beforeTextChanged(CharSequence charSequence, int i, int i1, int i2) {
         // pass
@@ -0,0 +1,120 @@
+/**
+ * @file PendingLights.java
+ * @brief Matching of LED-on acknowledgements to the light commands they acknowledge.
+ * @version 1.0
+ * @author Thomas Reidemeister <treideme@gmail.com>
+ * @copyright 2023 Thomas Reidemeister
+ * @license Apache-2.0
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.reidemeister.reactiontrainer;
+
+/**
+ * Matching of LED-on acknowledgements to the light commands they acknowledge.
+ *
+ * Commands and acks travel in order over the UART link, so acks are matched to pending
+ * commands first-in first-out. A command whose ack did not arrive within ACK_TIMEOUT_MS is
+ * considered lost. An ack arriving shortly after such a loss may be the late ack of the lost
+ * command rather than the ack of the next one, so it is consumed without producing a sample.
+ *
+ * Besides the time a command was queued, the time it was actually written to the Pod is
+ * kept, so the wait in the phone's send queue can be separated from the radio round trip.
+ */
+public class PendingLights {
+    public static final int CAPACITY = 16;
+
+    // Acks later than this are considered lost. Must be shorter than the interval between
+    // calibration lights, so a lost ack is expired before the next command is acknowledged.
+    public static final long ACK_TIMEOUT_MS = 300;
+
+    private final long[] queuedAt = new long[CAPACITY];
+    private final long[] writtenAt = new long[CAPACITY]; // -1 until written
+    private int head; // Oldest pending command
+    private int size;
+    private long lostAt = -1; // Time the last command was considered lost, -1 if none
+    private long matchedWrittenAt = -1;
+
+    /**
+     * Record a light command that was queued for sending.
+     * @param nowMs time the command was queued
+     */
+    public synchronized void queued(long nowMs) {
+        expire(nowMs);
+        if (size == CAPACITY) {
+            // Drop the oldest command, its ack is as good as lost.
+            pop();
+            lostAt = nowMs;
+        }
+        queuedAt[(head + size) % CAPACITY] = nowMs;
+        writtenAt[(head + size) % CAPACITY] = -1;
+        size++;
+    }
+
+    /**
+     * Record that the oldest light command not written yet was handed to the radio.
+     * Commands are written in the order they were queued.
+     * @param nowMs time of the write
+     */
+    public synchronized void written(long nowMs) {
+        for (int i = 0; i < size; i++) {
+            int idx = (head + i) % CAPACITY;
+            if (writtenAt[idx] < 0) {
+                writtenAt[idx] = nowMs;
+                return;
+            }
+        }
+    }
+
+    // Forget the most recent command, e.g. because it could not be queued after all.
+    public synchronized void cancelNewest() {
+        if (size > 0) {
+            size--;
+        }
+    }
+
+    /**
+     * Match an acknowledgement to its light command.
+     * @param nowMs time the acknowledgement was received
+     * @return time the acknowledged command was queued, or -1 if the ack could not be matched
+     */
+    public synchronized long acked(long nowMs) {
+        expire(nowMs);
+        boolean maybeLate = lostAt >= 0 && nowMs - lostAt <= ACK_TIMEOUT_MS;
+        lostAt = -1;
+        if (size == 0) {
+            return -1;
+        }
+        long written = writtenAt[head];
+        long sentAt = pop();
+        if (maybeLate) {
+            return -1;
+        }
+        matchedWrittenAt = written >= 0 ? written : sentAt;
+        return sentAt;
+    }
+
+    // Time the command matched by the last successful acked() was written to the Pod.
+    public synchronized long getMatchedWrittenAt() {
+        return matchedWrittenAt;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // Drop commands whose ack is overdue, each against its own queue time.
+    private void expire(long nowMs) {
+        while (size > 0 && nowMs - queuedAt[head] > ACK_TIMEOUT_MS) {
+            lostAt = queuedAt[head] + ACK_TIMEOUT_MS;
+            pop();
+        }
+    }
+
+    private long pop() {
+        long sentAt = queuedAt[head];
+        head = (head + 1) % CAPACITY;
+        size--;
+        return sentAt;
+    }
+}
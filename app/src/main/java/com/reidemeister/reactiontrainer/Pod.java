@@ -17,6 +17,7 @@ import android.bluetooth.BluetoothGattCallback;
 import android.bluetooth.BluetoothGattCharacteristic;
 import android.bluetooth.BluetoothGattDescriptor;
 import android.content.Context;
+import android.os.SystemClock;
 import android.util.Log;
 
 import java.nio.charset.StandardCharsets;
@@ -56,6 +57,10 @@ public class Pod extends BluetoothGattCallback {
     private BluetoothGattCharacteristic descriptorSoftwareRevision;
     private volatile boolean disAvailable;
 
+    // Stimulus latency state.
+    private final LatencyProfile latencyProfile;
+    private final PendingLights pendingLights;
+
     // Queues for characteristic read (synchronous)
     private final Queue<BluetoothGattCharacteristic> readQueue;
     private final Queue<byte[]>sendQueue;
@@ -83,6 +88,8 @@ public class Pod extends BluetoothGattCallback {
         this.writeInProgress = false;
         this.readQueue = new ConcurrentLinkedQueue<>();
         this.sendQueue = new ConcurrentLinkedQueue<>();
+        this.latencyProfile = new LatencyProfile();
+        this.pendingLights = new PendingLights();
         gatt = device.connectGatt(context, true, this);
     }
 
@@ -111,6 +118,10 @@ public class Pod extends BluetoothGattCallback {
                 writeInProgress = true; // Set the write in progress flag
                 byte [] value = sendQueue.poll();
                 if(value != null) {
+                    if(value[0] == 'L') {
+                        // Light command leaves the send queue now, the radio round trip starts here.
+                        pendingLights.written(SystemClock.elapsedRealtime());
+                    }
                     tx.setValue(value);
                     if (!gatt.writeCharacteristic(tx)) {
                         Log.d("ReactionTrainerLog", "send failed for "+new String(value, StandardCharsets.UTF_8));
@@ -145,6 +156,43 @@ public class Pod extends BluetoothGattCallback {
         }
     }
 
+    // Turn on the LED until tapped or the timeout expires, and remember when for latency tracking.
+    // Returns false if the command could not be sent.
+    public boolean light(int timeout) {
+        // Record before sending so that an early ack finds its command.
+        pendingLights.queued(SystemClock.elapsedRealtime());
+        if (!send(("L 1 " + timeout).getBytes(StandardCharsets.UTF_8))) {
+            // Not queued (e.g. disconnected) or the write failed, no ack will follow.
+            pendingLights.cancelNewest();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Handle the acknowledgement the Pod sends once the LED is on.
+     * @param firmwareDelayMs delay reported by the firmware between command receipt and LED on
+     * @return estimated command-to-illumination latency, or -1 if the ack could not be matched
+     *         to its light command
+     */
+    public long onLightAck(long firmwareDelayMs) {
+        long now = SystemClock.elapsedRealtime();
+        long queuedAt = pendingLights.acked(now);
+        if (queuedAt < 0) {
+            return -1;
+        }
+        // The wait in the send queue only delays the light, not notifications from the Pod.
+        long writtenAt = pendingLights.getMatchedWrittenAt();
+        long rtt = now - writtenAt;
+        long latency = (writtenAt - queuedAt) + LatencyProfile.estimate(rtt, firmwareDelayMs);
+        latencyProfile.add(latency, LatencyProfile.uplink(rtt, firmwareDelayMs));
+        return latency;
+    }
+
+    public LatencyProfile getLatencyProfile() {
+        return latencyProfile;
+    }
+
     // Register the specified callback to receive UART callbacks.
     public void registerCallback(Callback callback) {
         Log.d("ReactionTrainerLog", "registerCallback");
@@ -0,0 +1,171 @@
+/**
+ * @file BatteryHistoryTest.java
+ * @brief Unit tests for the battery time series.
+ * @version 1.0
+ * @author Thomas Reidemeister <treideme@gmail.com>
+ * @copyright 2023 Thomas Reidemeister
+ * @license Apache-2.0
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.reidemeister.reactiontrainer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class BatteryHistoryTest {
+    private static final long POLL_MS = 100;
+
+    // Record a reading every POLL_MS, discharging at the given rate.
+    private static void discharge(BatteryHistory history, long fromMs, long toMs, int startMv, double mvPerMinute) {
+        for (long t = fromMs; t < toMs; t += POLL_MS) {
+            history.add(t, (int) Math.round(startMv - mvPerMinute * t / BatteryHistory.MINUTE_MS));
+        }
+    }
+
+    @Test
+    public void flatSeriesHasNoForecast() {
+        BatteryHistory history = new BatteryHistory();
+        discharge(history, 0, 15 * BatteryHistory.MINUTE_MS, 3900, 0);
+        assertEquals(-1, history.timeToEmptyMs());
+    }
+
+    @Test
+    public void linearDischargeForecastsTimeToEmpty() {
+        BatteryHistory history = new BatteryHistory();
+        // 4000 mV falling 10 mV/min reaches 3700 mV after 30 min, 3300 mV 40 min later.
+        discharge(history, 0, 30 * BatteryHistory.MINUTE_MS, 4000, 10);
+        long expected = 40 * BatteryHistory.MINUTE_MS;
+        assertEquals(expected, history.timeToEmptyMs(), BatteryHistory.MINUTE_MS / 2);
+    }
+
+    @Test
+    public void noForecastUntilEnoughMinutes() {
+        BatteryHistory history = new BatteryHistory();
+        discharge(history, 0, 150 * 1000, 4000, 100);
+        assertEquals(-1, history.timeToEmptyMs());
+    }
+
+    @Test
+    public void singleLoadDipDoesNotReportEmpty() {
+        BatteryHistory history = new BatteryHistory();
+        discharge(history, 0, 10 * BatteryHistory.MINUTE_MS, 4000, 10);
+        history.add(10 * BatteryHistory.MINUTE_MS, 3200);
+        assertEquals(3200, history.latest());
+        assertTrue(history.timeToEmptyMs() > 0);
+    }
+
+    @Test
+    public void fittedVoltageBelowEmptyReportsZero() {
+        BatteryHistory history = new BatteryHistory();
+        discharge(history, 0, 10 * BatteryHistory.MINUTE_MS, 3340, 10);
+        assertEquals(0, history.timeToEmptyMs());
+    }
+
+    @Test
+    public void minuteBucketClosesOnBoundary() {
+        BatteryHistory history = new BatteryHistory();
+        history.add(0, 3900);
+        history.add(30000, 3800);
+        history.add(59999, 3700);
+        assertEquals(0, history.size(BatteryHistory.MINUTE));
+
+        history.add(BatteryHistory.MINUTE_MS, 3600);
+        assertEquals(1, history.size(BatteryHistory.MINUTE));
+        long[] time = new long[4];
+        int[] mv = new int[4];
+        assertEquals(1, history.downsample(BatteryHistory.MINUTE, 4, time, mv));
+        assertEquals((0 + 30000 + 59999) / 3, time[0]);
+        assertEquals(3800, mv[0]);
+    }
+
+    @Test
+    public void hourBucketClosesOnBoundary() {
+        BatteryHistory history = new BatteryHistory();
+        history.add(0, 3900);
+        history.add(BatteryHistory.HOUR_MS - 1, 3800);
+        assertEquals(0, history.size(BatteryHistory.HOUR));
+
+        history.add(BatteryHistory.HOUR_MS, 3700);
+        assertEquals(1, history.size(BatteryHistory.HOUR));
+        assertEquals(2, history.size(BatteryHistory.MINUTE));
+    }
+
+    @Test
+    public void rawRingKeepsFixedCapacity() {
+        BatteryHistory history = new BatteryHistory();
+        discharge(history, 0, 2 * BatteryHistory.RAW_CAPACITY * POLL_MS, 4000, 0);
+        assertEquals(BatteryHistory.RAW_CAPACITY, history.size(BatteryHistory.RAW));
+    }
+
+    @Test
+    public void downsampleKeepsEndpoints() {
+        BatteryHistory history = new BatteryHistory();
+        // Wrap the raw ring so the oldest sample is not at the start of the array.
+        long end = (BatteryHistory.RAW_CAPACITY + 123) * POLL_MS;
+        discharge(history, 0, end, 4000, 10);
+        long[] time = new long[50];
+        int[] mv = new int[50];
+
+        assertEquals(50, history.downsample(BatteryHistory.RAW, 50, time, mv));
+        assertEquals(123 * POLL_MS, time[0]);
+        assertEquals(end - POLL_MS, time[49]);
+        for (int i = 1; i < 50; i++) {
+            assertTrue(time[i] > time[i - 1]);
+        }
+    }
+
+    @Test
+    public void downsampleKeepsSpike() {
+        BatteryHistory history = new BatteryHistory();
+        for (int i = 0; i < 500; i++) {
+            history.add(i * POLL_MS, i == 250 ? 3000 : 3900);
+        }
+        long[] time = new long[20];
+        int[] mv = new int[20];
+        int count = history.downsample(BatteryHistory.RAW, 20, time, mv);
+
+        boolean found = false;
+        for (int i = 0; i < count; i++) {
+            found |= mv[i] == 3000 && time[i] == 250 * POLL_MS;
+        }
+        assertTrue(found);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void downsampleRejectsSmallThreshold() {
+        new BatteryHistory().downsample(BatteryHistory.RAW, 2, new long[10], new int[10]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void downsampleRejectsShortOutput() {
+        BatteryHistory history = new BatteryHistory();
+        discharge(history, 0, 100 * POLL_MS, 4000, 10);
+        history.downsample(BatteryHistory.RAW, 20, new long[20], new int[10]);
+    }
+
+    @Test
+    public void downsampleReturnsAtMostThreshold() {
+        BatteryHistory history = new BatteryHistory();
+        discharge(history, 0, 100 * POLL_MS, 4000, 10);
+        long[] time = new long[30];
+        int[] mv = new int[30];
+        assertEquals(10, history.downsample(BatteryHistory.RAW, 10, time, mv));
+        assertEquals(0, time[10]);
+    }
+
+    @Test
+    public void downsampleReturnsAllWhenBelowThreshold() {
+        BatteryHistory history = new BatteryHistory();
+        for (int i = 0; i < 10; i++) {
+            history.add(i * POLL_MS, 3900 - i);
+        }
+        long[] time = new long[20];
+        int[] mv = new int[20];
+        assertEquals(10, history.downsample(BatteryHistory.RAW, 20, time, mv));
+        assertEquals(0, time[0]);
+        assertEquals(3891, mv[9]);
+    }
+}
@@ -0,0 +1,193 @@
+/**
+ * @file DrillEvaluatorTest.java
+ * @brief Unit tests for the go/no-go drill evaluation.
+ * @version 1.0
+ * @author Thomas Reidemeister <treideme@gmail.com>
+ * @copyright 2023 Thomas Reidemeister
+ * @license Apache-2.0
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.reidemeister.reactiontrainer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class DrillEvaluatorTest {
+    private List<DrillEvaluator.Verdict> verdicts;
+    private DrillEvaluator evaluator;
+
+    @Before
+    public void setUp() {
+        verdicts = new ArrayList<>();
+        evaluator = new DrillEvaluator(verdicts::add, 4, DrillEvaluator.Rules.defaults());
+    }
+
+    private DrillEvaluator.Verdict last() {
+        return verdicts.get(verdicts.size() - 1);
+    }
+
+    @Test
+    public void goTappedInTimeIsHit() {
+        long id = evaluator.arm(0, DrillEvaluator.Kind.GO, 1000, 500);
+        evaluator.onTap(0, 1300);
+        assertEquals(1, verdicts.size());
+        assertEquals(DrillEvaluator.Outcome.HIT, last().outcome);
+        assertEquals(id, last().stimulusId);
+        assertEquals(300, last().reactionMs);
+    }
+
+    @Test
+    public void goNotTappedIsMiss() {
+        evaluator.arm(0, DrillEvaluator.Kind.GO, 1000, 500);
+        evaluator.expire(1400);
+        assertTrue(verdicts.isEmpty());
+        evaluator.expire(1500);
+        assertEquals(DrillEvaluator.Outcome.MISS, last().outcome);
+        assertEquals(-1, last().reactionMs);
+    }
+
+    @Test
+    public void tapAfterTimeoutIsMiss() {
+        evaluator.arm(0, DrillEvaluator.Kind.GO, 1000, 500);
+        evaluator.onTap(0, 1600);
+        assertEquals(DrillEvaluator.Outcome.MISS, last().outcome);
+    }
+
+    @Test
+    public void noGoNotTappedIsCorrectRejection() {
+        evaluator.arm(1, DrillEvaluator.Kind.NO_GO, 1000, 500);
+        evaluator.expire(1500);
+        assertEquals(DrillEvaluator.Outcome.CORRECT_REJECTION, last().outcome);
+    }
+
+    @Test
+    public void noGoTappedIsWrongTarget() {
+        evaluator.arm(1, DrillEvaluator.Kind.NO_GO, 1000, 500);
+        evaluator.onTap(1, 1300);
+        assertEquals(DrillEvaluator.Outcome.WRONG_TARGET, last().outcome);
+    }
+
+    @Test
+    public void tapOnOtherPodDuringGoIsWrongTarget() {
+        evaluator.arm(0, DrillEvaluator.Kind.GO, 1000, 500);
+        evaluator.onTap(1, 1300);
+        assertEquals(DrillEvaluator.Outcome.WRONG_TARGET, last().outcome);
+        assertEquals(-1, last().stimulusId);
+
+        // The GO stimulus is still active.
+        evaluator.onTap(0, 1350);
+        assertEquals(DrillEvaluator.Outcome.HIT, last().outcome);
+    }
+
+    @Test
+    public void tapWithoutStimulusIsFalseStart() {
+        evaluator.onTap(2, 1000);
+        assertEquals(DrillEvaluator.Outcome.FALSE_START, last().outcome);
+    }
+
+    @Test
+    public void anticipatedTapIsFalseStart() {
+        evaluator.arm(0, DrillEvaluator.Kind.GO, 1000, 500);
+        evaluator.onTap(0, 1000 + DrillEvaluator.MIN_REACTION_MS - 1);
+        assertEquals(DrillEvaluator.Outcome.FALSE_START, last().outcome);
+
+        evaluator.arm(0, DrillEvaluator.Kind.GO, 2000, 500);
+        evaluator.onTap(0, 1900);
+        assertEquals(DrillEvaluator.Outcome.FALSE_START, last().outcome);
+        assertEquals(0, last().reactionMs);
+    }
+
+    @Test
+    public void rearmResolvesPreviousStimulus() {
+        evaluator.arm(0, DrillEvaluator.Kind.GO, 1000, 0);
+        evaluator.arm(0, DrillEvaluator.Kind.GO, 2000, 0);
+        assertEquals(1, verdicts.size());
+        assertEquals(DrillEvaluator.Outcome.MISS, last().outcome);
+    }
+
+    @Test
+    public void noTimeoutNeverExpires() {
+        evaluator.arm(0, DrillEvaluator.Kind.GO, 1000, 0);
+        evaluator.expire(Long.MAX_VALUE - 1);
+        assertTrue(verdicts.isEmpty());
+    }
+
+    @Test
+    public void simultaneousStimuliResolveIndependently() {
+        evaluator.arm(0, DrillEvaluator.Kind.GO, 1000, 500);
+        evaluator.arm(1, DrillEvaluator.Kind.NO_GO, 1000, 500);
+        evaluator.arm(2, DrillEvaluator.Kind.GO, 1000, 800);
+        evaluator.arm(3, DrillEvaluator.Kind.GO, 1000, 500);
+        evaluator.onTap(3, 1200);
+        evaluator.expire(1500);
+        evaluator.onTap(2, 1700);
+
+        assertEquals(1, evaluator.getCount(DrillEvaluator.Outcome.MISS));
+        assertEquals(1, evaluator.getCount(DrillEvaluator.Outcome.CORRECT_REJECTION));
+        assertEquals(2, evaluator.getCount(DrillEvaluator.Outcome.HIT));
+        assertEquals(4, verdicts.size());
+    }
+
+    @Test
+    public void pausedIgnoresEvents() {
+        evaluator.setPaused(true);
+        assertEquals(-1, evaluator.arm(0, DrillEvaluator.Kind.GO, 1000, 500));
+        evaluator.onTap(1, 1100);
+        evaluator.expire(2000);
+        assertTrue(verdicts.isEmpty());
+
+        evaluator.setPaused(false);
+        evaluator.onTap(1, 2100);
+        assertEquals(DrillEvaluator.Outcome.FALSE_START, last().outcome);
+    }
+
+    @Test
+    public void resetClearsStimuliAndTallies() {
+        evaluator.arm(0, DrillEvaluator.Kind.GO, 1000, 500);
+        evaluator.onTap(1, 1100);
+        evaluator.reset();
+        evaluator.expire(2000);
+        assertEquals(1, verdicts.size());
+        assertEquals(0, evaluator.getCount(DrillEvaluator.Outcome.WRONG_TARGET));
+    }
+
+    @Test
+    public void customRulesChangeOutcomes() {
+        DrillEvaluator.Rules rules = DrillEvaluator.Rules.defaults()
+                .set(DrillEvaluator.Kind.NO_GO, DrillEvaluator.Event.EARLY_TAP, DrillEvaluator.Outcome.WRONG_TARGET)
+                .setUnarmed(DrillEvaluator.Event.IDLE_TAP, null);
+        evaluator = new DrillEvaluator(verdicts::add, 4, rules);
+
+        evaluator.onTap(0, 1000);
+        assertTrue(verdicts.isEmpty());
+
+        evaluator.arm(1, DrillEvaluator.Kind.NO_GO, 2000, 500);
+        evaluator.onTap(1, 2010);
+        assertEquals(DrillEvaluator.Outcome.WRONG_TARGET, last().outcome);
+    }
+
+    @Test
+    public void rulesAreCopied() {
+        DrillEvaluator.Rules rules = DrillEvaluator.Rules.defaults();
+        evaluator = new DrillEvaluator(verdicts::add, 4, rules);
+        rules.set(DrillEvaluator.Kind.GO, DrillEvaluator.Event.TAP, DrillEvaluator.Outcome.MISS);
+
+        evaluator.arm(0, DrillEvaluator.Kind.GO, 1000, 500);
+        evaluator.onTap(0, 1300);
+        assertEquals(DrillEvaluator.Outcome.HIT, last().outcome);
+    }
+
+    @Test
+    public void invalidSlotIsIgnored() {
+        assertEquals(-1, evaluator.arm(4, DrillEvaluator.Kind.GO, 1000, 500));
+        evaluator.onTap(-1, 1000);
+        assertTrue(verdicts.isEmpty());
+    }
+}
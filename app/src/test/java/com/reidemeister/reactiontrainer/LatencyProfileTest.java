@@ -0,0 +1,91 @@
+/**
+ * @file LatencyProfileTest.java
+ * @brief Unit tests for the Pod latency profile.
+ * @version 1.0
+ * @author Thomas Reidemeister <treideme@gmail.com>
+ * @copyright 2023 Thomas Reidemeister
+ * @license Apache-2.0
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.reidemeister.reactiontrainer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LatencyProfileTest {
+    @Test
+    public void estimateSplitsRoundTrip() {
+        // 40 ms round trip, 10 ms of it in the firmware: 15 ms each way plus 10 ms to light.
+        assertEquals(25, LatencyProfile.estimate(40, 10));
+    }
+
+    @Test
+    public void estimateIgnoresImplausibleFirmwareDelay() {
+        assertEquals(20, LatencyProfile.estimate(40, -5));
+        assertEquals(20, LatencyProfile.estimate(40, 50));
+    }
+
+    @Test
+    public void uplinkIsRoundTripOutsideFirmware() {
+        assertEquals(15, LatencyProfile.uplink(40, 10));
+        assertEquals(20, LatencyProfile.uplink(40, 50));
+    }
+
+    @Test
+    public void uplinkMedianOnceCalibrated() {
+        LatencyProfile profile = new LatencyProfile();
+        for (int i = 0; i < LatencyProfile.MIN_SAMPLES; i++) {
+            assertEquals(0, profile.uplinkMedian());
+            profile.add(25, 15);
+        }
+        assertEquals(25, profile.median());
+        assertEquals(15, profile.uplinkMedian());
+    }
+
+    @Test
+    public void percentileOfSamples() {
+        LatencyProfile profile = new LatencyProfile();
+        assertEquals(0, profile.percentile(50));
+        for (int i = 10; i >= 1; i--) {
+            profile.add(i * 10, 0);
+        }
+        assertEquals(10, profile.percentile(0));
+        assertEquals(60, profile.percentile(50));
+        assertEquals(90, profile.percentile(90));
+        assertEquals(100, profile.percentile(100));
+    }
+
+    @Test
+    public void medianOnlyOnceCalibrated() {
+        LatencyProfile profile = new LatencyProfile();
+        for (int i = 0; i < LatencyProfile.MIN_SAMPLES - 1; i++) {
+            profile.add(30, 0);
+        }
+        assertFalse(profile.isCalibrated());
+        assertEquals(0, profile.median());
+
+        profile.add(30, 0);
+        assertTrue(profile.isCalibrated());
+        assertEquals(30, profile.median());
+    }
+
+    @Test
+    public void ringKeepsRecentSamples() {
+        LatencyProfile profile = new LatencyProfile();
+        for (int i = 0; i < LatencyProfile.CAPACITY; i++) {
+            profile.add(100, 0);
+        }
+        for (int i = 0; i < LatencyProfile.CAPACITY; i++) {
+            profile.add(20, 0);
+        }
+        assertEquals(LatencyProfile.CAPACITY, profile.size());
+        assertEquals(20, profile.percentile(100));
+
+        profile.clear();
+        assertEquals(0, profile.size());
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * @file PendingLightsTest.java
+ * @brief Unit tests for matching LED-on acknowledgements to light commands.
+ * @version 1.0
+ * @author Thomas Reidemeister <treideme@gmail.com>
+ * @copyright 2023 Thomas Reidemeister
+ * @license Apache-2.0
+ *
+ * SPDX-License-Identifier: Apache-2.0
+ */
+package com.reidemeister.reactiontrainer;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class PendingLightsTest {
+    private static final long RTT_MS = 40;
+    private static final long INTERVAL_MS = 500;
+
+    @Test
+    public void ackMatchesCommand() {
+        PendingLights pending = new PendingLights();
+        pending.queued(1000);
+        assertEquals(1000, pending.acked(1000 + RTT_MS));
+        assertEquals(0, pending.size());
+    }
+
+    @Test
+    public void ackWithoutCommandIsIgnored() {
+        PendingLights pending = new PendingLights();
+        assertEquals(-1, pending.acked(1000));
+    }
+
+    @Test
+    public void pipelinedCommandsMatchInOrder() {
+        PendingLights pending = new PendingLights();
+        pending.queued(1000);
+        pending.queued(1010);
+        assertEquals(1000, pending.acked(1040));
+        assertEquals(1010, pending.acked(1050));
+    }
+
+    @Test
+    public void writeTimeIsReportedForMatchedCommand() {
+        PendingLights pending = new PendingLights();
+        pending.queued(1000);
+        pending.queued(1010);
+        pending.written(1100);
+        pending.written(1150);
+        assertEquals(1000, pending.acked(1140));
+        assertEquals(1100, pending.getMatchedWrittenAt());
+        assertEquals(1010, pending.acked(1190));
+        assertEquals(1150, pending.getMatchedWrittenAt());
+    }
+
+    @Test
+    public void cancelledCommandIsNotMatched() {
+        PendingLights pending = new PendingLights();
+        pending.queued(1000);
+        pending.cancelNewest();
+        assertEquals(-1, pending.acked(1040));
+    }
+
+    @Test
+    public void droppedAckDoesNotStallLaterSamples() {
+        PendingLights pending = new PendingLights();
+        int rounds = 20;
+        int dropped = 3;
+        int recorded = 0;
+        for (int i = 0; i < rounds; i++) {
+            long sentAt = i * INTERVAL_MS;
+            pending.queued(sentAt);
+            if (i == dropped) {
+                continue;
+            }
+            long matched = pending.acked(sentAt + RTT_MS);
+            if (matched >= 0) {
+                // Every recorded sample belongs to its own command.
+                assertEquals(sentAt, matched);
+                recorded++;
+            }
+        }
+        // The ack right after the loss could have been the late one and is discarded too.
+        assertEquals(rounds - 2, recorded);
+        assertEquals(0, pending.size());
+    }
+
+    @Test
+    public void lateAckIsNotMatchedToNewerCommand() {
+        PendingLights pending = new PendingLights();
+        pending.queued(0);
+        pending.queued(INTERVAL_MS);
+        // Late ack of the first command, after it expired.
+        assertEquals(-1, pending.acked(INTERVAL_MS + 10));
+        // Ack of the second command.
+        assertEquals(-1, pending.acked(INTERVAL_MS + RTT_MS));
+
+        pending.queued(2 * INTERVAL_MS);
+        assertEquals(2 * INTERVAL_MS, pending.acked(2 * INTERVAL_MS + RTT_MS));
+    }
+
+    @Test
+    public void lostAckIsForgottenEventually() {
+        PendingLights pending = new PendingLights();
+        pending.queued(0);
+        pending.queued(10 * PendingLights.ACK_TIMEOUT_MS);
+        assertEquals(10 * PendingLights.ACK_TIMEOUT_MS,
+                pending.acked(10 * PendingLights.ACK_TIMEOUT_MS + RTT_MS));
+    }
+
+    @Test
+    public void capacityIsBounded() {
+        PendingLights pending = new PendingLights();
+        for (int i = 0; i < 2 * PendingLights.CAPACITY; i++) {
+            pending.queued(1000 + i);
+        }
+        assertEquals(PendingLights.CAPACITY, pending.size());
+    }
+}